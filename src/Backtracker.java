@@ -71,4 +71,53 @@ public class Backtracker {
         } 
         return Optional.empty();
     }
+
+    /**
+     * Count the solutions reachable from a given configuration, stopping
+     * as soon as the limit is reached.  A limit of 2 is enough to tell
+     * whether a puzzle has a unique solution.  The search gives up once
+     * it has looked at more than budget configurations.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @param budget The most configurations to look at
+     * @return The number of solutions found, never more than limit, or
+     *  -1 if the budget ran out first
+     */
+    public int countSolutions(Configuration config, int limit, long budget) {
+        long[] remaining = {budget};
+        int count = countSolutions(config, limit, remaining);
+        return remaining[0] < 0 ? -1 : count;
+    }
+
+    /**
+     * The recursive part of countSolutions, which spends the budget.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @param remaining A one element array holding the budget left, shared
+     *  by every level of this search
+     * @return The number of solutions found, never more than limit
+     */
+    private int countSolutions(Configuration config, int limit,
+                               long[] remaining) {
+        debugPrint("Current config", config);
+        if (--remaining[0] < 0) {
+            return 0;
+        }
+        if (config.isGoal()) {
+            debugPrint("Goal config", config);
+            return 1;
+        }
+        int count = 0;
+        for (Configuration child : config.getSuccessors()) {
+            if (child.isValid()) {
+                count += countSolutions(child, limit - count, remaining);
+                if (count >= limit || remaining[0] < 0) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,749 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts the solutions of a Nurikabe puzzle, stopping at two, so the
+ * generator can tell whether a clue set pins its solution down.
+ *
+ * Rather than trying land and sea in every cell like the backtracker, each
+ * clue starts with every island shape it could possibly have, and the
+ * search only ever chooses between those shapes.  After each choice the
+ * board is propagated until nothing changes:
+ * <ul>
+ * <li>shapes that no longer fit the board are dropped;</li>
+ * <li>a clue with one shape left is placed, and its island is surrounded
+ *  by sea;</li>
+ * <li>cells in every shape of a clue are land for that clue, and cells
+ *  bordering every shape are sea;</li>
+ * <li>cells that no shape can reach are sea;</li>
+ * <li>three sea cells in a 2x2 block make the fourth land, and a block
+ *  that only one clue can reach must be partly covered by that clue;</li>
+ * <li>a piece of sea with one way out grows through it, and a full pool
+ *  or a sea that can no longer join up ends the branch.</li>
+ * </ul>
+ * The cheap rules are applied to the board first; shapes are only checked
+ * against it again once those rules have nothing more to say.
+ *
+ * The checker is independent of the backtracker, so the puzzles it accepts
+ * are not biased towards ones the backtracker finds easy.
+ *
+ * @author Kyle McCoy
+ */
+public class NurikabeChecker {
+    /**
+     * The outcome of a check.
+     */
+    public enum Result {
+        /** The puzzle has no solution. */
+        NONE,
+        /** The puzzle has exactly one solution. */
+        UNIQUE,
+        /** The puzzle has more than one solution. */
+        MULTIPLE,
+        /** The budget ran out before the search finished. */
+        UNKNOWN
+    }
+
+    /*
+     * Cell states.  Cells owned by an island hold the island's clue index.
+     */
+    private static final int SEA = -1;
+    private static final int EMPTY = -2;
+    private static final int LAND = -3;
+
+    /*
+     * The four orthogonal directions, as row and column offsets.
+     */
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    /**
+     * One way an island could lie on the board: its cells and the cells
+     * bordering it, both as indices row * columns + column and as bit sets
+     * for quick tests against the board.
+     */
+    private static class Shape {
+        final int[] cells;
+        final int[] border;
+        final long[] cellBits;
+        final long[] borderBits;
+
+        Shape(int[] cells, int[] border, int size) {
+            this.cells = cells;
+            this.border = border;
+            cellBits = toBits(cells, size);
+            borderBits = toBits(border, size);
+        }
+    }
+
+    /**
+     * The shapes a clue may still take, with how many of them use each cell
+     * and how many border it.  Never changed once built, so states can
+     * share them.
+     */
+    private static class Options {
+        final Shape[] shapes;
+        final int[] inCount;
+        final int[] borderCount;
+
+        Options(Shape[] shapes, int size) {
+            this.shapes = shapes;
+            inCount = new int[size];
+            borderCount = new int[size];
+            for (Shape shape : shapes) {
+                for (int c : shape.cells) {
+                    inCount[c]++;
+                }
+                for (int c : shape.border) {
+                    borderCount[c]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A partly solved board: the state of every cell, the shapes each clue
+     * may still take, which clues have been placed, and which clues have
+     * had a cell near them change since their shapes were last checked.
+     */
+    private static class State {
+        final int[] cell;
+        final Options[] options;
+        final boolean[] placed;
+        final boolean[] dirty;
+
+        State(int[] cell, Options[] options, boolean[] placed, boolean[] dirty) {
+            this.cell = cell;
+            this.options = options;
+            this.placed = placed;
+            this.dirty = dirty;
+        }
+
+        State copy() {
+            return new State(cell.clone(), options.clone(), placed.clone(),
+                    dirty.clone());
+        }
+    }
+
+    /*
+     * The board dimensions.
+     */
+    private final int rows;
+    private final int columns;
+
+    /*
+     * The starting state, with every clue's shapes enumerated.
+     */
+    private final State start;
+
+    /*
+     * How many sea cells a solution has: every cell not in an island.
+     */
+    private final int seaSize;
+
+    /*
+     * How many longs a bit set of the board's cells takes.
+     */
+    private final int words;
+
+    /*
+     * The cells orthogonally next to each cell.
+     */
+    private final int[][] neighbours;
+
+    /*
+     * For each cell, the clues with a shape that uses or borders it, whose
+     * shapes need checking again when the cell changes.
+     */
+    private final int[][] zone;
+
+    /**
+     * Prepare to check a puzzle.
+     *
+     * @param grid the puzzle, using '.' for empty cells and 1-9 for clues
+     */
+    public NurikabeChecker(char[][] grid) {
+        rows = grid.length;
+        columns = grid[0].length;
+        words = (rows * columns + 63) / 64;
+        neighbours = new int[rows * columns][];
+        for (int c = 0; c < neighbours.length; c++) {
+            neighbours[c] = findNeighbours(c);
+        }
+        List<Integer> clueCells = new ArrayList<>();
+        int[] cell = new int[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                cell[row * columns + col] = EMPTY;
+                if (Character.isDigit(grid[row][col])) {
+                    cell[row * columns + col] = clueCells.size();
+                    clueCells.add(row * columns + col);
+                }
+            }
+        }
+        Options[] options = new Options[clueCells.size()];
+        int landSize = 0;
+        for (int k = 0; k < options.length; k++) {
+            int anchor = clueCells.get(k);
+            int size = grid[anchor / columns][anchor % columns] - '0';
+            options[k] = new Options(enumerate(cell, k, anchor, size), cell.length);
+            landSize += size;
+        }
+        seaSize = rows * columns - landSize;
+        zone = new int[cell.length][];
+        for (int c = 0; c < cell.length; c++) {
+            List<Integer> near = new ArrayList<>();
+            for (int k = 0; k < options.length; k++) {
+                if (options[k].inCount[c] > 0 || options[k].borderCount[c] > 0) {
+                    near.add(k);
+                }
+            }
+            zone[c] = new int[near.size()];
+            for (int i = 0; i < zone[c].length; i++) {
+                zone[c][i] = near.get(i);
+            }
+        }
+        boolean[] dirty = new boolean[options.length];
+        Arrays.fill(dirty, true);
+        start = new State(cell, options, new boolean[options.length], dirty);
+    }
+
+    /**
+     * Count the puzzle's solutions, up to two.
+     *
+     * @param budget the most search nodes to visit
+     * @param used a one element array that the nodes visited are added to
+     * @param solutions where the solutions found go, each giving for every
+     *  cell (row * columns + column) the index of the clue whose island it
+     *  is in, counting clues in reading order, or -1 for sea
+     * @return whether the puzzle has none, one or several solutions, or
+     *  UNKNOWN if the budget ran out first
+     */
+    public Result check(long budget, long[] used, List<int[]> solutions) {
+        long[] remaining = {budget};
+        int count = search(start.copy(), remaining, solutions);
+        used[0] += budget - Math.max(remaining[0], 0);
+        if (remaining[0] < 0) {
+            return Result.UNKNOWN;
+        }
+        return count == 0 ? Result.NONE :
+                count == 1 ? Result.UNIQUE : Result.MULTIPLE;
+    }
+
+    /**
+     * Propagate a state, then branch on the clue with the fewest shapes.
+     *
+     * @param state the state to search from; it is changed
+     * @param remaining a one element array holding the budget left
+     * @param solutions where the solutions found go
+     * @return the number of solutions found, at most two
+     */
+    private int search(State state, long[] remaining, List<int[]> solutions) {
+        if (--remaining[0] < 0 || !propagate(state)) {
+            return 0;
+        }
+        int best = -1;
+        for (int k = 0; k < state.options.length; k++) {
+            if (!state.placed[k] && (best < 0 || state.options[k].shapes.length
+                    < state.options[best].shapes.length)) {
+                best = k;
+            }
+        }
+        if (best < 0) {
+            // like the backtracker, a board with no sea is not a solution
+            for (int c : state.cell) {
+                if (c == SEA) {
+                    solutions.add(state.cell);
+                    return 1;
+                }
+            }
+            return 0;
+        }
+        int count = 0;
+        for (Shape shape : state.options[best].shapes) {
+            State child = state.copy();
+            place(child, best, shape);
+            count += search(child, remaining, solutions);
+            if (count >= 2 || remaining[0] < 0) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply the deductions listed in the class comment until none of them
+     * changes anything.
+     *
+     * @param state the state to propagate; it is changed
+     * @return false if the state turned out to have no solution
+     */
+    private boolean propagate(State state) {
+        int[] cell = state.cell;
+        int clues = state.options.length;
+        while (true) {
+            boolean changed = false;
+
+            // cells every shape agrees on, and which clues can reach a cell;
+            // shapes that no longer fit only make these rules more cautious
+            int[] reach = new int[cell.length];
+            int[] reacher = new int[cell.length];
+            for (int k = 0; k < clues; k++) {
+                if (state.placed[k]) {
+                    continue;
+                }
+                Options options = state.options[k];
+                int n = options.shapes.length;
+                for (int c = 0; c < cell.length; c++) {
+                    if (options.inCount[c] > 0) {
+                        reach[c]++;
+                        reacher[c] = k;
+                    }
+                    if (options.inCount[c] == n && cell[c] != k) {
+                        if (cell[c] != EMPTY && cell[c] != LAND) {
+                            return false;
+                        }
+                        set(state, c, k);
+                        changed = true;
+                    } else if (options.borderCount[c] == n && cell[c] != SEA) {
+                        if (cell[c] != EMPTY) {
+                            return false;
+                        }
+                        set(state, c, SEA);
+                        changed = true;
+                    }
+                }
+            }
+            for (int c = 0; c < cell.length; c++) {
+                if (reach[c] == 0 && cell[c] == EMPTY) {
+                    set(state, c, SEA);
+                    changed = true;
+                } else if (reach[c] == 0 && cell[c] == LAND) {
+                    return false;
+                } else if (reach[c] == 1 && cell[c] == LAND) {
+                    set(state, c, reacher[c]);
+                    changed = true;
+                }
+            }
+
+            // pools
+            for (int row = 0; row + 1 < rows; row++) {
+                for (int col = 0; col + 1 < columns; col++) {
+                    int top = row * columns + col;
+                    int sea = 0;
+                    int empty = -1;
+                    for (int c : new int[]{top, top + 1, top + columns, top + columns + 1}) {
+                        if (cell[c] == SEA) {
+                            sea++;
+                        } else if (cell[c] == EMPTY) {
+                            empty = c;
+                        }
+                    }
+                    if (sea == 4) {
+                        return false;
+                    }
+                    if (sea == 3 && empty >= 0) {
+                        set(state, empty, LAND);
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                continue;
+            }
+
+            // the sea
+            Boolean escaped = seaEscapes(state);
+            if (escaped == null) {
+                return false;
+            }
+            if (escaped) {
+                continue;
+            }
+
+            // only once the cheap rules are exhausted, drop shapes that no
+            // longer fit, placing clues left with one
+            long[] seaBits = new long[words];
+            long[] landBits = new long[words];
+            long[] claimed = new long[words];
+            long[][] owned = new long[clues][words];
+            for (int c = 0; c < cell.length; c++) {
+                if (cell[c] == SEA) {
+                    seaBits[c >> 6] |= 1L << c;
+                } else if (cell[c] != EMPTY) {
+                    landBits[c >> 6] |= 1L << c;
+                    if (cell[c] >= 0) {
+                        claimed[c >> 6] |= 1L << c;
+                        owned[cell[c]][c >> 6] |= 1L << c;
+                    }
+                }
+            }
+            for (int k = 0; k < clues; k++) {
+                if (state.placed[k] || !state.dirty[k]) {
+                    continue;
+                }
+                state.dirty[k] = false;
+                Shape[] shapes = state.options[k].shapes;
+                Shape[] fits = null;
+                int count = 0;
+                for (int i = 0; i < shapes.length; i++) {
+                    if (fits(shapes[i], owned[k], seaBits, landBits, claimed)) {
+                        if (fits != null) {
+                            fits[count] = shapes[i];
+                        }
+                        count++;
+                    } else if (fits == null) {
+                        fits = Arrays.copyOf(shapes, shapes.length);
+                    }
+                }
+                if (count == 0) {
+                    return false;
+                }
+                if (count == 1) {
+                    place(state, k, fits == null ? shapes[0] : fits[0]);
+                    changed = true;
+                } else if (fits != null) {
+                    state.options[k] = new Options(
+                            Arrays.copyOf(fits, count), cell.length);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                continue;
+            }
+
+            // blocks with no land yet that only one clue can keep from
+            // being a pool: that clue's island must cover them
+            for (int row = 0; row + 1 < rows; row++) {
+                for (int col = 0; col + 1 < columns; col++) {
+                    int top = row * columns + col;
+                    int[] block = {top, top + 1, top + columns, top + columns + 1};
+                    int only = -1;
+                    for (int c : block) {
+                        if (cell[c] != SEA && cell[c] != EMPTY) {
+                            only = clues;
+                        } else if (cell[c] == EMPTY) {
+                            only = reach[c] > 1 || (only >= 0 && only != reacher[c])
+                                    ? clues : reacher[c];
+                        }
+                    }
+                    if (only < 0 || only == clues || state.placed[only]) {
+                        continue;
+                    }
+                    Shape[] shapes = state.options[only].shapes;
+                    long[] blockBits = toBits(block, cell.length);
+                    List<Shape> covers = new ArrayList<>();
+                    for (Shape shape : shapes) {
+                        if (overlaps(shape.cellBits, blockBits)) {
+                            covers.add(shape);
+                        }
+                    }
+                    if (covers.size() < shapes.length) {
+                        if (covers.isEmpty()) {
+                            return false;
+                        }
+                        state.options[only] = new Options(
+                                covers.toArray(new Shape[0]), cell.length);
+                        state.dirty[only] = true;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Change a cell, marking the clues whose shapes it could affect.
+     *
+     * @param state the state to change
+     * @param c the cell
+     * @param value the cell's new state
+     */
+    private void set(State state, int c, int value) {
+        state.cell[c] = value;
+        for (int k : zone[c]) {
+            state.dirty[k] = true;
+        }
+    }
+
+    /**
+     * Do two bit sets share a member?
+     *
+     * @param a one bit set
+     * @param b the other
+     * @return true if they overlap
+     */
+    private static boolean overlaps(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & b[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does a shape still fit the board for a clue?  None of its cells may
+     * be sea or another island's, none of its border may be land, and it
+     * must cover every cell already known to be the clue's.
+     *
+     * @param shape the shape to test
+     * @param owned the cells known to be the clue's
+     * @param sea the cells known to be sea
+     * @param land the cells known to be land, whoever's they are
+     * @param claimed the cells known to be in some clue's island
+     * @return true if the shape fits
+     */
+    private static boolean fits(Shape shape, long[] owned, long[] sea,
+                                long[] land, long[] claimed) {
+        for (int w = 0; w < owned.length; w++) {
+            long cells = shape.cellBits[w];
+            if ((cells & (sea[w] | (claimed[w] & ~owned[w]))) != 0
+                    || (shape.borderBits[w] & land[w]) != 0
+                    || (owned[w] & ~cells) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make a bit set of cells.
+     *
+     * @param cells the cells
+     * @param size the number of cells on the board
+     * @return the bit set
+     */
+    private static long[] toBits(int[] cells, int size) {
+        long[] bits = new long[(size + 63) / 64];
+        for (int c : cells) {
+            bits[c >> 6] |= 1L << c;
+        }
+        return bits;
+    }
+
+    /**
+     * Place a clue's island: its cells become the clue's land and its
+     * border becomes sea.  Only called with shapes that fit.
+     *
+     * @param state the state to change
+     * @param k the clue
+     * @param shape the island's shape
+     */
+    private void place(State state, int k, Shape shape) {
+        for (int c : shape.cells) {
+            set(state, c, k);
+        }
+        for (int c : shape.border) {
+            set(state, c, SEA);
+        }
+        state.options[k] = new Options(new Shape[]{shape}, state.cell.length);
+        state.placed[k] = true;
+    }
+
+    /**
+     * Check that the sea can still be joined up.  Every known sea cell
+     * must be able to reach every other through cells that are sea or
+     * still empty, and a piece of sea smaller than the whole sea that has
+     * only one empty cell next to it must grow through that cell.
+     *
+     * @param state the state to check; a cell may be changed
+     * @return null if the sea cannot be joined up, otherwise whether any
+     *  cell was changed
+     */
+    private Boolean seaEscapes(State state) {
+        int[] cell = state.cell;
+        int first = -1;
+        int total = 0;
+        for (int c = 0; c < cell.length; c++) {
+            if (cell[c] == SEA) {
+                total++;
+                if (first < 0) {
+                    first = c;
+                }
+            }
+        }
+        if (first < 0) {
+            return false;
+        }
+        if (total > seaSize) {
+            return null;
+        }
+
+        // every piece of sea must reach the first one
+        boolean[] visited = new boolean[cell.length];
+        int[] stack = new int[cell.length];
+        int top = 0;
+        stack[top++] = first;
+        visited[first] = true;
+        int reached = 0;
+        while (top > 0) {
+            int c = stack[--top];
+            if (cell[c] == SEA) {
+                reached++;
+            }
+            for (int next : neighbours[c]) {
+                if (!visited[next] && (cell[next] == SEA || cell[next] == EMPTY)) {
+                    visited[next] = true;
+                    stack[top++] = next;
+                }
+            }
+        }
+        if (reached != total) {
+            return null;
+        }
+
+        // pieces of sea with one way out
+        int[] piece = new int[cell.length];
+        for (int start = 0; start < cell.length; start++) {
+            if (cell[start] != SEA || piece[start] != 0) {
+                continue;
+            }
+            int mark = start + 1;
+            int size = 0;
+            int exit = -1;
+            boolean manyExits = false;
+            top = 0;
+            stack[top++] = start;
+            piece[start] = mark;
+            while (top > 0) {
+                int c = stack[--top];
+                size++;
+                for (int next : neighbours[c]) {
+                    if (cell[next] == SEA && piece[next] == 0) {
+                        piece[next] = mark;
+                        stack[top++] = next;
+                    } else if (cell[next] == EMPTY && next != exit) {
+                        manyExits |= exit >= 0;
+                        exit = next;
+                    }
+                }
+            }
+            if (size < seaSize && exit < 0) {
+                return null;
+            }
+            if (size < seaSize && !manyExits) {
+                // the pieces have changed, so let the caller look again
+                set(state, exit, SEA);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * List every shape a clue's island could take: connected sets of size
+     * cells that contain the clue, contain no other clue and touch no
+     * other clue.  Each shape is produced once, by Redelmeier's method of
+     * never reconsidering a cell that an earlier branch already tried.
+     *
+     * @param cell the starting state of every cell
+     * @param k the clue
+     * @param anchor the clue's cell
+     * @param size the clue's number
+     * @return the shapes
+     */
+    private Shape[] enumerate(int[] cell, int k, int anchor, int size) {
+        boolean[] allowed = new boolean[cell.length];
+        for (int c = 0; c < cell.length; c++) {
+            allowed[c] = cell[c] == k || cell[c] == EMPTY;
+            for (int n : neighbours[c]) {
+                if (cell[n] >= 0 && cell[n] != k) {
+                    allowed[c] = false;
+                }
+            }
+        }
+        List<Shape> shapes = new ArrayList<>();
+        boolean[] reached = new boolean[cell.length];
+        reached[anchor] = true;
+        List<Integer> untried = new ArrayList<>();
+        untried.add(anchor);
+        grow(new int[size], 0, untried, reached, allowed, shapes);
+        return shapes.toArray(new Shape[0]);
+    }
+
+    /**
+     * One level of the shape enumeration.
+     *
+     * @param cells the shape so far, in its first depth entries
+     * @param depth how many cells the shape has
+     * @param untried cells next to the shape that may still be added
+     * @param reached cells that have been offered to this shape already
+     * @param allowed cells the clue's island may use
+     * @param shapes where finished shapes go
+     */
+    private void grow(int[] cells, int depth, List<Integer> untried,
+                      boolean[] reached, boolean[] allowed, List<Shape> shapes) {
+        List<Integer> rest = new ArrayList<>(untried);
+        while (!rest.isEmpty()) {
+            int c = rest.remove(rest.size() - 1);
+            cells[depth] = c;
+            if (depth + 1 == cells.length) {
+                shapes.add(makeShape(cells));
+                continue;
+            }
+            List<Integer> added = new ArrayList<>();
+            for (int n : neighbours[c]) {
+                if (allowed[n] && !reached[n]) {
+                    reached[n] = true;
+                    added.add(n);
+                }
+            }
+            List<Integer> next = new ArrayList<>(rest);
+            next.addAll(added);
+            grow(cells, depth + 1, next, reached, allowed, shapes);
+            for (int n : added) {
+                reached[n] = false;
+            }
+        }
+    }
+
+    /**
+     * Build a shape from its cells, working out its border.
+     *
+     * @param cells the shape's cells
+     * @return the shape
+     */
+    private Shape makeShape(int[] cells) {
+        boolean[] inside = new boolean[rows * columns];
+        for (int c : cells) {
+            inside[c] = true;
+        }
+        List<Integer> border = new ArrayList<>();
+        for (int c : cells) {
+            for (int n : neighbours[c]) {
+                if (!inside[n]) {
+                    inside[n] = true;
+                    border.add(n);
+                }
+            }
+        }
+        int[] borderCells = new int[border.size()];
+        for (int i = 0; i < borderCells.length; i++) {
+            borderCells[i] = border.get(i);
+        }
+        return new Shape(cells.clone(), borderCells, rows * columns);
+    }
+
+    /**
+     * Work out the cells orthogonally next to a cell.
+     *
+     * @param c the cell
+     * @return its neighbours on the board
+     */
+    private int[] findNeighbours(int c) {
+        int[] result = new int[4];
+        int count = 0;
+        for (int[] d : DIRECTIONS) {
+            int row = c / columns + d[0];
+            int col = c % columns + d[1];
+            if (row >= 0 && row < rows && col >= 0 && col < columns) {
+                result[count++] = row * columns + col;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
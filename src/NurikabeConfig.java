@@ -39,42 +39,63 @@ public class NurikabeConfig implements Configuration {
      * @throws FileNotFoundException if the file is not found
      */
     public NurikabeConfig(String filename) throws FileNotFoundException {
+        this(readBoard(filename)) ;
+    }
+
+    /**
+     * Reads the starting board from an input file in the format described
+     * for the file constructor.
+     *
+     * @param filename the name of the file to read from
+     * @return the board, rows by columns
+     * @throws FileNotFoundException if the file is not found
+     */
+    private static char[][] readBoard(String filename) throws FileNotFoundException {
         try (Scanner in = new Scanner(new File(filename))) {
-            // TODO
             String line = in.nextLine() ;
             String[] row_column = line.split(" ") ;
             int row = Integer.parseInt(row_column[0]) ;
             int column = Integer.parseInt(row_column[1]) ;
-            max_land = 0 ;
-            max_sea = 0 ;
-            columns = column ;
-            rows = row ;
-            ArrayList<Character> parts = new ArrayList<>() ;
-            for(int i = 1; i < 10; i++){
-                String piece = i + "";
-                parts.add(piece.charAt(0)) ;
-            }
-            board = new char[row][column] ;
+            char[][] grid = new char[row][column] ;
             for(int i = 0; i < row; i++){
                 String next_line = in.nextLine() ;
                 String[] tiles = next_line.split(" ") ;
                 for(int j = 0; j < column; j++){
                     if(tiles[j].equals("&#64;")){
-                        board[i][j] = '@' ;
+                        grid[i][j] = '@' ;
                     }
                     else{
-                        board[i][j] = tiles[j].charAt(0) ;
-                    }
-                    if(parts.contains(tiles[j].charAt(0))){
-                        max_land += (Integer.parseInt(tiles[j])) ;
+                        grid[i][j] = tiles[j].charAt(0) ;
                     }
                 }
             }
-            max_sea = (columns * rows) - max_land ;
-            last_move_col = -1 ;
-            last_move_row = 0 ;
+            return grid ;
         }
+    }
 
+    /**
+     * Construct the initial configuration from a board that is already in
+     * memory, using the same symbols as the input file.  The file
+     * constructor reads the board and then hands it to this one.
+     *
+     * @param grid the starting board, rows by columns
+     */
+    public NurikabeConfig(char[][] grid) {
+        rows = grid.length ;
+        columns = grid[0].length ;
+        max_land = 0 ;
+        board = new char[rows][columns] ;
+        for(int i = 0; i < rows; i++){
+            System.arraycopy(grid[i], 0, board[i], 0, columns);
+            for(int j = 0; j < columns; j++){
+                if(board[i][j] >= '1' && board[i][j] <= '9'){
+                    max_land += board[i][j] - '0' ;
+                }
+            }
+        }
+        max_sea = (columns * rows) - max_land ;
+        last_move_col = -1 ;
+        last_move_row = 0 ;
     }
 
     /**
@@ -0,0 +1,726 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates random Nurikabe puzzles that have exactly one solution.
+ * A solved board is built first, a clue is placed in each island, and
+ * NurikabeChecker is used to throw away clue sets that do not pin the
+ * solution down.  Puzzles are written in the same format as the files in
+ * the data directory, with the solution appended.
+ *
+ * Difficulty is tuned with the fraction of the board that is land, the
+ * fraction of cells that hold a clue, and the largest island allowed.
+ * Boards whose land or clue count miss the request by more than a small
+ * tolerance are thrown away, and the land and clues actually used are
+ * reported for each puzzle.  Much below 0.35 land a board without pools
+ * is hard to find, so such requests mostly end up off target.
+ *
+ * All limits are counted in tries and checker nodes rather than time, so
+ * the same seed always gives the same puzzle.
+ *
+ * @author Kyle McCoy
+ */
+public class NurikabeGenerator {
+    /*
+     * How many times to move a clue on one solved board, trying to rule
+     * out other solutions, before building a new one.
+     */
+    private static final int CLUE_MOVES = 50;
+
+    /*
+     * How many solved boards to try for one puzzle before giving up.
+     */
+    private static final int BOARD_TRIES = 200;
+
+    /*
+     * How many checker nodes one puzzle may use, over all of its checks.
+     */
+    private static final long PUZZLE_BUDGET = 1000000;
+
+    /*
+     * How many checker nodes one check may use, so that a single hard
+     * clue set cannot spend the whole puzzle budget.
+     */
+    private static final long CHECK_BUDGET = 50000;
+
+    /*
+     * How far the land may be from the request, as a fraction of the board.
+     */
+    private static final double LAND_TOLERANCE = 0.03;
+
+    /*
+     * How far the number of clues may be from the request, as a fraction
+     * of the number requested.
+     */
+    private static final double CLUE_TOLERANCE = 0.1;
+
+    /*
+     * The four orthogonal directions, as row and column offsets.
+     */
+    private static final int[][] DIRECTIONS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+    /*
+     * The board dimensions.
+     */
+    private final int rows;
+    private final int columns;
+
+    /*
+     * The fraction of the board to make land, between 0 and 1.
+     */
+    private final double land;
+
+    /*
+     * The fraction of the board's cells that hold a clue, at most land.
+     */
+    private final double clues;
+
+    /*
+     * The largest island size, between 1 and 9.
+     */
+    private final int maxIsland;
+
+    /*
+     * The random source; each generator owns one so threads don't share.
+     */
+    private final Random random;
+
+    /*
+     * The solved board being built, using '#' for land and '@' for sea.
+     */
+    private char[][] board;
+
+    /*
+     * Which island each land cell belongs to, or -1 for sea.
+     */
+    private int[][] owner;
+
+    /*
+     * The cells of each island, as {row, column} pairs.
+     */
+    private List<List<int[]>> islands;
+
+    /*
+     * The size each island was planned to have.
+     */
+    private List<Integer> planned;
+
+    /*
+     * The finished puzzle and solution, in input file format.
+     */
+    private String puzzle;
+
+    /*
+     * Checker nodes used, boards thrown away for missing the requested
+     * land or clues, and clue sets dropped for having several solutions
+     * or for running out of budget.
+     */
+    private final long[] nodes = {0};
+    private int offTarget;
+    private int notUnique;
+    private int overBudget;
+
+    /**
+     * Create a generator for puzzles of one size and difficulty.
+     *
+     * @param rows the number of rows
+     * @param columns the number of columns
+     * @param land the fraction of the board to make land
+     * @param clues the fraction of the board's cells that hold a clue
+     * @param maxIsland the largest island size
+     * @param seed the random seed
+     */
+    public NurikabeGenerator(int rows, int columns, double land,
+                             double clues, int maxIsland, long seed) {
+        this.rows = rows;
+        this.columns = columns;
+        this.land = land;
+        this.clues = clues;
+        this.maxIsland = maxIsland;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate a puzzle with a unique solution.  Each solved board starts
+     * with its clues in random cells of their islands.  While the checker
+     * finds another solution, some island differs between the two; moving
+     * that island's clue to one of its cells that the other solution does
+     * not give to the clue rules the other solution out, and the board is
+     * checked again.
+     *
+     * @return true if a puzzle was found within the allowed tries and budget
+     */
+    public boolean generate() {
+        for (int tries = 0; tries < BOARD_TRIES; tries++) {
+            if (!buildSolution()) {
+                offTarget++;
+                continue;
+            }
+            int[][] clueCells = new int[islands.size()][];
+            for (int id = 0; id < clueCells.length; id++) {
+                List<int[]> island = islands.get(id);
+                clueCells[id] = island.get(random.nextInt(island.size()));
+            }
+            for (int moves = 0; moves < CLUE_MOVES; moves++) {
+                if (nodes[0] >= PUZZLE_BUDGET) {
+                    return false;
+                }
+                char[][] solution = withClues(board, clueCells);
+                char[][] grid = new char[rows][columns];
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < columns; col++) {
+                        char cell = solution[row][col];
+                        grid[row][col] = Character.isDigit(cell) ? cell : '.';
+                    }
+                }
+                List<int[]> found = new ArrayList<>();
+                NurikabeChecker checker = new NurikabeChecker(grid);
+                NurikabeChecker.Result result =
+                        checker.check(Math.min(CHECK_BUDGET,
+                                PUZZLE_BUDGET - nodes[0]), nodes, found);
+                if (result == NurikabeChecker.Result.UNIQUE) {
+                    puzzle = format(grid, solution);
+                    return true;
+                }
+                if (result == NurikabeChecker.Result.UNKNOWN) {
+                    overBudget++;
+                    break;
+                }
+                notUnique++;
+                if (!moveClue(clueCells, found)) {
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move one clue so that a solution other than the board being built is
+     * ruled out: the clue goes to a cell of its island that the other
+     * solution leaves out of the clue's island.
+     *
+     * @param clueCells the clue cell of each island; one is changed
+     * @param found the solutions the checker found
+     * @return true if a clue was moved
+     */
+    private boolean moveClue(int[][] clueCells, List<int[]> found) {
+        for (int[] other : found) {
+            List<int[]> moves = new ArrayList<>();
+            for (int id = 0; id < clueCells.length; id++) {
+                int clue = other[clueCells[id][0] * columns + clueCells[id][1]];
+                for (int[] cell : islands.get(id)) {
+                    if (other[cell[0] * columns + cell[1]] != clue) {
+                        moves.add(new int[]{id, cell[0], cell[1]});
+                    }
+                }
+            }
+            if (!moves.isEmpty()) {
+                int[] move = moves.get(random.nextInt(moves.size()));
+                clueCells[move[0]] = new int[]{move[1], move[2]};
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the puzzle found by generate.
+     *
+     * @return the puzzle followed by its solution, in input file format
+     */
+    public String getPuzzle() {
+        return puzzle;
+    }
+
+    /**
+     * Get the number of clues, one per island, on the last board built.
+     *
+     * @return the number of clues
+     */
+    public int getClues() {
+        return islands.size();
+    }
+
+    /**
+     * Get the fraction of the last board built that is land.
+     *
+     * @return the land fraction, between 0 and 1
+     */
+    public double getLandFraction() {
+        int landCount = 0;
+        for (List<int[]> island : islands) {
+            landCount += island.size();
+        }
+        return (double) landCount / (rows * columns);
+    }
+
+    /**
+     * Describe what generate went through: checker nodes used and how many
+     * boards and clue sets were thrown away, and why.
+     *
+     * @return the summary
+     */
+    public String getEffort() {
+        return String.format("%d checker nodes; dropped %d boards off " +
+                        "target, %d clue sets not unique, %d over budget",
+                nodes[0], offTarget, notUnique, overBudget);
+    }
+
+    /**
+     * Build a random solved board: islands of at most maxIsland cells that
+     * never touch each other, surrounded by a single connected sea with no
+     * 2x2 pools.  Island sizes are planned up front, and islands are then
+     * started and grown where they break up pools, most constrained pool
+     * first, so that as little land as possible goes beyond the plan.
+     *
+     * @return true if a board was built close enough to the requested land
+     *  and clues; false if it had to be abandoned
+     */
+    private boolean buildSolution() {
+        board = new char[rows][columns];
+        owner = new int[rows][columns];
+        islands = new ArrayList<>();
+        planned = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                board[row][col] = '@';
+                owner[row][col] = -1;
+            }
+        }
+        int cells = rows * columns;
+        int target = (int) Math.round(land * cells);
+        int count = Math.max(1, Math.min(target,
+                (int) Math.round(clues * cells)));
+        List<Integer> unplaced = planSizes(target, count);
+
+        // break up pools, always working on the one with fewest ways out
+        while (true) {
+            List<int[]> best = null;
+            for (int row = 0; row + 1 < rows; row++) {
+                for (int col = 0; col + 1 < columns; col++) {
+                    if (isPool(row, col)) {
+                        List<int[]> moves = poolMoves(row, col, unplaced);
+                        if (best == null || moves.size() < best.size()) {
+                            best = moves;
+                        }
+                    }
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            if (!makeMove(best, unplaced)) {
+                return false;
+            }
+        }
+
+        // spend what is left of the plan
+        for (int id = 0; id < islands.size(); id++) {
+            while (islands.get(id).size() < planned.get(id) && grow(id)) {
+                // keep growing until the island is its planned size or stuck
+            }
+        }
+        while (!unplaced.isEmpty()) {
+            List<int[]> seeds = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < columns; col++) {
+                    seeds.add(new int[]{row, col, -1, 0});
+                }
+            }
+            if (!makeMove(seeds, unplaced)) {
+                break;
+            }
+            int id = islands.size() - 1;
+            while (islands.get(id).size() < planned.get(id) && grow(id)) {
+                // keep growing until the island is its planned size or stuck
+            }
+        }
+
+        int landCount = 0;
+        for (List<int[]> island : islands) {
+            landCount += island.size();
+        }
+        return Math.abs(landCount - target) <=
+                Math.max(1, Math.round(LAND_TOLERANCE * cells)) &&
+                Math.abs(islands.size() - count) <=
+                Math.max(1, Math.round(CLUE_TOLERANCE * count));
+    }
+
+    /**
+     * Split the land into islands of random sizes between 1 and maxIsland.
+     *
+     * @param target the total land
+     * @param count the number of islands
+     * @return the island sizes, in random order
+     */
+    private List<Integer> planSizes(int target, int count) {
+        int[] sizes = new int[count];
+        List<Integer> growable = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sizes[i] = 1;
+            if (maxIsland > 1) {
+                growable.add(i);
+            }
+        }
+        for (int extra = target - count; extra > 0 && !growable.isEmpty(); extra--) {
+            int pick = random.nextInt(growable.size());
+            int i = growable.get(pick);
+            if (++sizes[i] == maxIsland) {
+                growable.remove(pick);
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        for (int size : sizes) {
+            result.add(size);
+        }
+        return result;
+    }
+
+    /**
+     * List the ways a pool could be broken up: a cell of the pool either
+     * joins a neighbouring island or starts a new one.  Each move is
+     * {row, column, island or -1 for a new one, rank}, where the rank puts
+     * growing an island towards its planned size first, then starting a
+     * planned island, then growing an island past its plan, and last
+     * starting an island that was never planned.  Whether the sea stays
+     * connected is left for makeMove to find out.
+     *
+     * @param top the top row of the pool
+     * @param left the left column of the pool
+     * @param unplaced the planned island sizes not started yet
+     * @return the moves
+     */
+    private List<int[]> poolMoves(int top, int left, List<Integer> unplaced) {
+        List<int[]> moves = new ArrayList<>();
+        for (int row = top; row <= top + 1; row++) {
+            for (int col = left; col <= left + 1; col++) {
+                int id = -1;
+                boolean touchesTwo = false;
+                for (int[] d : DIRECTIONS) {
+                    int r = row + d[0];
+                    int c = col + d[1];
+                    if (inBounds(r, c) && owner[r][c] >= 0) {
+                        touchesTwo |= id >= 0 && id != owner[r][c];
+                        id = owner[r][c];
+                    }
+                }
+                if (touchesTwo) {
+                    continue;
+                }
+                if (id < 0) {
+                    moves.add(new int[]{row, col, -1, unplaced.isEmpty() ? 3 : 1});
+                } else if (islands.get(id).size() < maxIsland) {
+                    int rank = islands.get(id).size() < planned.get(id) ? 0 : 2;
+                    moves.add(new int[]{row, col, id, rank});
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Make one of the given moves, trying them by rank and otherwise in
+     * random order, and skipping any that would split the sea.
+     *
+     * @param moves the moves, as listed by poolMoves
+     * @param unplaced the planned island sizes not started yet; a new
+     *  island takes the next one, or size 1 if there are none left
+     * @return true if a move was made
+     */
+    private boolean makeMove(List<int[]> moves, List<Integer> unplaced) {
+        Collections.shuffle(moves, random);
+        moves.sort(Comparator.comparingInt(move -> move[3]));
+        for (int[] move : moves) {
+            int id = move[2] < 0 ? islands.size() : move[2];
+            if (canBeLand(move[0], move[1], id)) {
+                if (move[2] < 0) {
+                    islands.add(new ArrayList<>());
+                    planned.add(unplaced.isEmpty() ? 1 : unplaced.remove(0));
+                }
+                makeLand(move[0], move[1], id);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grow an island by one randomly chosen neighbouring sea cell.
+     *
+     * @param id the island to grow
+     * @return true if the island grew; false if it has nowhere to go
+     */
+    private boolean grow(int id) {
+        List<int[]> frontier = new ArrayList<>();
+        for (int[] cell : islands.get(id)) {
+            for (int[] d : DIRECTIONS) {
+                int row = cell[0] + d[0];
+                int col = cell[1] + d[1];
+                if (canBeLand(row, col, id)) {
+                    frontier.add(new int[]{row, col});
+                }
+            }
+        }
+        if (frontier.isEmpty()) {
+            return false;
+        }
+        int[] pick = frontier.get(random.nextInt(frontier.size()));
+        makeLand(pick[0], pick[1], id);
+        return true;
+    }
+
+    /**
+     * Can a sea cell be turned into land for the given island?  It must not
+     * touch any other island, and the sea must stay connected without it.
+     *
+     * @param row the cell's row
+     * @param col the cell's column
+     * @param id the island the cell would join
+     * @return true if the cell can become land
+     */
+    private boolean canBeLand(int row, int col, int id) {
+        if (!inBounds(row, col) || board[row][col] != '@') {
+            return false;
+        }
+        for (int[] d : DIRECTIONS) {
+            int r = row + d[0];
+            int c = col + d[1];
+            if (inBounds(r, c) && owner[r][c] >= 0 && owner[r][c] != id) {
+                return false;
+            }
+        }
+        board[row][col] = '#';
+        boolean connected = seaConnects();
+        board[row][col] = '@';
+        return connected;
+    }
+
+    /**
+     * Turn a sea cell into land belonging to an island.
+     *
+     * @param row the cell's row
+     * @param col the cell's column
+     * @param id the island the cell joins
+     */
+    private void makeLand(int row, int col, int id) {
+        board[row][col] = '#';
+        owner[row][col] = id;
+        islands.get(id).add(new int[]{row, col});
+    }
+
+    /**
+     * Is the sea a single, non empty, connected region?
+     *
+     * @return true if every sea cell can reach every other
+     */
+    private boolean seaConnects() {
+        int total = 0;
+        int[] start = null;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                if (board[row][col] == '@') {
+                    total++;
+                    if (start == null) {
+                        start = new int[]{row, col};
+                    }
+                }
+            }
+        }
+        if (start == null) {
+            return false;
+        }
+        boolean[][] visited = new boolean[rows][columns];
+        List<int[]> stack = new ArrayList<>();
+        stack.add(start);
+        visited[start[0]][start[1]] = true;
+        int reached = 0;
+        while (!stack.isEmpty()) {
+            int[] cell = stack.remove(stack.size() - 1);
+            reached++;
+            for (int[] d : DIRECTIONS) {
+                int r = cell[0] + d[0];
+                int c = cell[1] + d[1];
+                if (inBounds(r, c) && !visited[r][c] && board[r][c] == '@') {
+                    visited[r][c] = true;
+                    stack.add(new int[]{r, c});
+                }
+            }
+        }
+        return reached == total;
+    }
+
+    /**
+     * Is the 2x2 block whose top left corner is given all sea?
+     *
+     * @param row the top row
+     * @param col the left column
+     * @return true if the block is a pool
+     */
+    private boolean isPool(int row, int col) {
+        return board[row][col] == '@' && board[row + 1][col] == '@'
+                && board[row][col + 1] == '@' && board[row + 1][col + 1] == '@';
+    }
+
+    /**
+     * Is the cell on the board?
+     *
+     * @param row the cell's row
+     * @param col the cell's column
+     * @return true if the cell is in bounds
+     */
+    private boolean inBounds(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < columns;
+    }
+
+    /**
+     * Copy a solved board, putting each island's size on its clue cell.
+     *
+     * @param solved the solved board
+     * @param clueCells the clue cell of each island
+     * @return the solved board with clues
+     */
+    private char[][] withClues(char[][] solved, int[][] clueCells) {
+        char[][] solution = new char[rows][columns];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(solved[row], 0, solution[row], 0, columns);
+        }
+        for (int id = 0; id < clueCells.length; id++) {
+            int[] cell = clueCells[id];
+            solution[cell[0]][cell[1]] = (char) ('0' + islands.get(id).size());
+        }
+        return solution;
+    }
+
+    /**
+     * Write a puzzle and its solution in input file format.
+     *
+     * @param clues the board with clues only
+     * @param solution the solved board
+     * @return the file contents
+     */
+    private String format(char[][] clues, char[][] solution) {
+        StringBuilder result = new StringBuilder();
+        result.append(rows).append(" ").append(columns).append("\n");
+        appendBoard(result, clues);
+        result.append("\n\nA ").append(rows).append("x").append(columns)
+                .append(" puzzle with a solution:\n\n");
+        appendBoard(result, solution);
+        return result.toString();
+    }
+
+    /**
+     * Append a board, one line per row with cells separated by spaces.
+     *
+     * @param result where to append the board
+     * @param grid the board to append
+     */
+    private void appendBoard(StringBuilder result, char[][] grid) {
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                result.append("\n");
+            }
+            for (int col = 0; col < columns; col++) {
+                if (col > 0) {
+                    result.append(" ");
+                }
+                result.append(grid[row][col]);
+            }
+        }
+    }
+
+    /**
+     * The main method.  Generates the requested number of puzzles in
+     * parallel and writes each one to its own file, named after its seed.
+     *
+     * @param args the command line arguments (rows, columns, number of
+     *  puzzles, land fraction, clue fraction, largest island, output
+     *  directory and an optional seed)
+     * @throws InterruptedException if interrupted while waiting for puzzles
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 7 && args.length != 8) {
+            System.err.println("Usage: java NurikabeGenerator rows columns " +
+                    "count land clues max-island directory [seed]");
+            return;
+        }
+        int rows = Integer.parseInt(args[0]);
+        int columns = Integer.parseInt(args[1]);
+        int count = Integer.parseInt(args[2]);
+        double land = Double.parseDouble(args[3]);
+        double clues = Double.parseDouble(args[4]);
+        int maxIsland = Integer.parseInt(args[5]);
+        File directory = new File(args[6]);
+        long seed = args.length == 8 ?
+                Long.parseLong(args[7]) : System.currentTimeMillis();
+        if (rows < 1 || columns < 1 || land <= 0 || land >= 1 ||
+                maxIsland < 1 || maxIsland > 9 || clues <= 0 ||
+                clues > land || land > clues * maxIsland) {
+            System.err.println("Need rows, columns > 0, 0 < land < 1, " +
+                    "1 <= max-island <= 9 and " +
+                    "0 < clues <= land <= clues * max-island");
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Cannot create directory " + directory);
+            return;
+        }
+
+        // one task per puzzle, each with its own seed so runs repeat
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        List<Future<NurikabeGenerator>> puzzles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long puzzleSeed = seed + i;
+            puzzles.add(pool.submit(() -> {
+                NurikabeGenerator generator = new NurikabeGenerator(
+                        rows, columns, land, clues, maxIsland, puzzleSeed);
+                generator.generate();
+                return generator;
+            }));
+        }
+        pool.shutdown();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                String name = String.format("gen_%dx%d_%d.txt",
+                        rows, columns, seed + i);
+                NurikabeGenerator generator;
+                try {
+                    generator = puzzles.get(i).get();
+                } catch (ExecutionException e) {
+                    System.out.println(name + ": failed (" + e.getCause() + ")");
+                    continue;
+                }
+                if (generator.getPuzzle() == null) {
+                    System.out.println(name + ": no unique puzzle found (" +
+                            generator.getEffort() + ")");
+                    continue;
+                }
+                try (PrintWriter out = new PrintWriter(new File(directory, name))) {
+                    out.print(generator.getPuzzle());
+                } catch (FileNotFoundException e) {
+                    System.out.println(name + ": not written (" +
+                            e.getMessage() + ")");
+                    continue;
+                }
+                System.out.println(String.format(
+                        "%s: written (%d clues, %.2f land; %s)", name,
+                        generator.getClues(), generator.getLandFraction(),
+                        generator.getEffort()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}